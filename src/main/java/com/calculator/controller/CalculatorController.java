@@ -6,9 +6,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.UUID;
 
 @Controller
 public class CalculatorController {
@@ -24,6 +26,7 @@ public class CalculatorController {
     public String home(Model model) {
         log.info("Loading calculator home page");
         addHistoryToModel(model);
+        addIdempotencyKeyToModel(model);
         return "calculator";
     }
 
@@ -32,11 +35,15 @@ public class CalculatorController {
             @RequestParam("operand1") double operand1,
             @RequestParam("operand2") double operand2,
             @RequestParam("operator") String operator,
+            @RequestParam(value = "idempotencyKey", required = false) String idempotencyKeyParam,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKeyHeader,
             Model model) {
 
         try {
             log.info("Calculating: {} {} {}", operand1, operator, operand2);
-            double result = calculatorService.calculate(operand1, operand2, operator);
+            double result = StringUtils.hasText(idempotencyKeyHeader)
+                    ? calculatorService.calculate(operand1, operand2, operator, idempotencyKeyHeader)
+                    : calculatorService.calculateFormSubmission(operand1, operand2, operator, idempotencyKeyParam);
             model.addAttribute("result", result);
             model.addAttribute("operand1", operand1);
             model.addAttribute("operand2", operand2);
@@ -49,6 +56,7 @@ public class CalculatorController {
         }
 
         addHistoryToModel(model);
+        addIdempotencyKeyToModel(model);
         return "calculator";
     }
 
@@ -63,4 +71,11 @@ public class CalculatorController {
         List<CalculationHistory> history = calculatorService.getRecentHistory();
         model.addAttribute("history", history);
     }
+
+    /**
+     * Each rendered form gets a fresh key, so a browser re-post of the same form is deduplicated.
+     */
+    private void addIdempotencyKeyToModel(Model model) {
+        model.addAttribute("idempotencyKey", UUID.randomUUID().toString());
+    }
 }
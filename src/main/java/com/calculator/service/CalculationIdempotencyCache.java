@@ -0,0 +1,179 @@
+package com.calculator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, TTL-evicting store of calculation results keyed by idempotency key.
+ * A repeated key returns the stored result without re-running the calculation,
+ * and concurrent requests with the same key share a single in-flight computation.
+ */
+@Component
+public class CalculationIdempotencyCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CalculationIdempotencyCache.class);
+
+    private final Map<IdempotencyKey, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Node> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final long waitTimeoutNanos;
+    private final Counter hits;
+    private final Counter coalesced;
+    private final Counter misses;
+
+    public CalculationIdempotencyCache(
+            @Value("${calculator.idempotency.ttl:10m}") Duration ttl,
+            @Value("${calculator.idempotency.max-entries:10000}") int maxEntries,
+            @Value("${calculator.idempotency.wait-timeout:30s}") Duration waitTimeout,
+            MeterRegistry meterRegistry) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.waitTimeoutNanos = waitTimeout.toNanos();
+        this.hits = requestCounter(meterRegistry, "hit");
+        this.coalesced = requestCounter(meterRegistry, "coalesced");
+        this.misses = requestCounter(meterRegistry, "miss");
+        meterRegistry.gauge("calculator.idempotency.entries", entries, Map::size);
+    }
+
+    /**
+     * Returns the result stored for the key, waits for the in-flight computation
+     * using the key, or runs the computation and stores its result.
+     * Failed computations are not stored, so a retry with the same key runs again.
+     * When the map is full of in-flight computations the result is not stored either.
+     *
+     * @param key         the idempotency key
+     * @param fingerprint identifies the calculation the key was first used for
+     * @param computation performs and persists the calculation
+     * @throws IllegalArgumentException if the key was used for a different calculation
+     * @throws IllegalStateException    if the in-flight computation does not finish within the wait timeout
+     */
+    public double execute(IdempotencyKey key, String fingerprint, Supplier<Double> computation) {
+        long now = System.nanoTime();
+        sweep(now);
+
+        Entry fresh = new Entry(fingerprint, new CompletableFuture<>(), now);
+        Entry entry = entries.compute(key, (k, current) ->
+                current == null || current.isExpired(now, ttlNanos) ? fresh : current);
+
+        if (entry != fresh) {
+            if (!entry.fingerprint().equals(fingerprint)) {
+                log.warn("Idempotency key {} reused for a different calculation", key);
+                throw new IllegalArgumentException("Idempotency key was already used for a different calculation");
+            }
+            if (entry.result().isDone()) {
+                log.debug("Idempotency key {} hit, returning stored result", key);
+                hits.increment();
+            } else {
+                log.debug("Idempotency key {} in flight, waiting for result", key);
+                coalesced.increment();
+            }
+            return await(entry.result());
+        }
+
+        misses.increment();
+        insertionOrder.add(new Node(key, fresh));
+        sweep(now);
+        if (entries.size() > maxEntries) {
+            log.debug("Idempotency cache full of in-flight calculations, not storing key {}", key);
+            entries.remove(key, fresh);
+        }
+        try {
+            double result = computation.get();
+            fresh.result().complete(result);
+            return result;
+        } catch (Throwable t) {
+            entries.remove(key, fresh);
+            fresh.result().completeExceptionally(t);
+            throw t;
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops expired entries, then the oldest completed entries while over capacity.
+     * Entries are visited in insertion order; in-flight entries are moved to the back
+     * so they do not hold up eviction of the entries behind them.
+     */
+    private void sweep(long now) {
+        sweepLock.lock();
+        try {
+            Node firstInFlight = null;
+            Node head;
+            while ((head = insertionOrder.peek()) != null && head != firstInFlight) {
+                Entry entry = head.entry();
+                if (entries.get(head.key()) != entry) {
+                    insertionOrder.poll();
+                } else if (!entry.result().isDone()) {
+                    insertionOrder.add(insertionOrder.poll());
+                    if (firstInFlight == null) {
+                        firstInFlight = head;
+                    }
+                } else if (entry.isExpired(now, ttlNanos) || entries.size() > maxEntries) {
+                    entries.remove(head.key(), entry);
+                    insertionOrder.poll();
+                } else {
+                    break;
+                }
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private double await(CompletableFuture<Double> result) {
+        try {
+            return result.get(waitTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("In-flight calculation failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out waiting for in-flight calculation", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for in-flight calculation", e);
+        }
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("calculator.idempotency.requests")
+                .description("Calculation requests carrying an idempotency key, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record Entry(String fingerprint, CompletableFuture<Double> result, long createdAt) {
+
+        boolean isExpired(long now, long ttlNanos) {
+            return result.isDone() && now - createdAt >= ttlNanos;
+        }
+    }
+
+    private record Node(IdempotencyKey key, Entry entry) {
+    }
+}
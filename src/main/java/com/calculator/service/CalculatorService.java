@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
 import java.util.List;
 
@@ -13,10 +14,40 @@ import java.util.List;
 public class CalculatorService {
 
     private static final Logger log = LoggerFactory.getLogger(CalculatorService.class);
+    static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
     private final CalculationHistoryRepository historyRepository;
+    private final CalculationIdempotencyCache idempotencyCache;
 
-    public CalculatorService(CalculationHistoryRepository historyRepository) {
+    public CalculatorService(CalculationHistoryRepository historyRepository,
+                             CalculationIdempotencyCache idempotencyCache) {
         this.historyRepository = historyRepository;
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    /**
+     * Calculates once per idempotency key: repeated or concurrent requests with the
+     * same key share the first result and do not save history again.
+     * Reusing the key for a different calculation is rejected.
+     * Without a key this behaves like {@link #calculate(double, double, String)}.
+     */
+    public double calculate(double operand1, double operand2, String operator, String idempotencyKey) {
+        if (!StringUtils.hasText(idempotencyKey)) {
+            return calculate(operand1, operand2, operator);
+        }
+        return calculateOnce(IdempotencyKey.header(idempotencyKey), operand1, operand2, operator);
+    }
+
+    /**
+     * Like {@link #calculate(double, double, String, String)} for the key rendered into the
+     * calculator form. A browser re-post repeats the same values, so the same key with
+     * different values is a new submission (e.g. after the back button) and is calculated.
+     */
+    public double calculateFormSubmission(double operand1, double operand2, String operator, String formKey) {
+        if (!StringUtils.hasText(formKey)) {
+            return calculate(operand1, operand2, operator);
+        }
+        return calculateOnce(IdempotencyKey.form(formKey, fingerprint(operand1, operand2, operator)),
+                operand1, operand2, operator);
     }
 
     public double calculate(double operand1, double operand2, String operator) {
@@ -61,6 +92,19 @@ public class CalculatorService {
         historyRepository.save(history);
     }
 
+    private double calculateOnce(IdempotencyKey key, double operand1, double operand2, String operator) {
+        if (key.value().length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Idempotency key must not exceed " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        return idempotencyCache.execute(key, fingerprint(operand1, operand2, operator),
+                () -> calculate(operand1, operand2, operator));
+    }
+
+    private static String fingerprint(double operand1, double operand2, String operator) {
+        return operand1 + " " + operator + " " + operand2;
+    }
+
     public List<CalculationHistory> getRecentHistory() {
         log.debug("Fetching recent calculation history");
         return historyRepository.findTop10ByOrderByCalculatedAtDesc();
@@ -0,0 +1,17 @@
+package com.calculator.service;
+
+/**
+ * Key under which a calculation result is stored in {@link CalculationIdempotencyCache}.
+ * Header keys are bound to the first calculation they are used for; form keys are
+ * scoped to the submitted values, so the two never collide.
+ */
+public record IdempotencyKey(String value, String formFingerprint) {
+
+    public static IdempotencyKey header(String value) {
+        return new IdempotencyKey(value, null);
+    }
+
+    public static IdempotencyKey form(String value, String fingerprint) {
+        return new IdempotencyKey(value, fingerprint);
+    }
+}
@@ -260,6 +260,8 @@
             <h1>🧮 Calculator</h1>
             
             <form action="/calculate" method="post" class="calculator-form">
+                <input type="hidden" name="idempotencyKey" value="${idempotencyKey}">
+
                 <div class="input-group">
                     <label for="operand1">First Number:</label>
                     <input type="number" id="operand1" name="operand1" step="any" 
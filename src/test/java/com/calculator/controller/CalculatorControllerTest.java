@@ -38,7 +38,8 @@ class CalculatorControllerTest {
         mockMvc.perform(get("/"))
                 .andExpect(status().isOk())
                 .andExpect(view().name("calculator"))
-                .andExpect(model().attributeExists("history"));
+                .andExpect(model().attributeExists("history"))
+                .andExpect(model().attributeExists("idempotencyKey"));
 
         verify(calculatorService, times(1)).getRecentHistory();
     }
@@ -46,7 +47,7 @@ class CalculatorControllerTest {
     @Test
     void testCalculateAddition() throws Exception {
         // Given
-        when(calculatorService.calculate(10.0, 5.0, "add")).thenReturn(15.0);
+        when(calculatorService.calculateFormSubmission(10.0, 5.0, "add", null)).thenReturn(15.0);
         when(calculatorService.getRecentHistory()).thenReturn(new ArrayList<>());
 
         // When & Then
@@ -61,13 +62,13 @@ class CalculatorControllerTest {
                 .andExpect(model().attribute("operand2", 5.0))
                 .andExpect(model().attribute("operator", "add"));
 
-        verify(calculatorService, times(1)).calculate(10.0, 5.0, "add");
+        verify(calculatorService, times(1)).calculateFormSubmission(10.0, 5.0, "add", null);
     }
 
     @Test
     void testCalculateDivisionByZero() throws Exception {
         // Given
-        when(calculatorService.calculate(10.0, 0.0, "divide"))
+        when(calculatorService.calculateFormSubmission(10.0, 0.0, "divide", null))
                 .thenThrow(new ArithmeticException("Cannot divide by zero"));
         when(calculatorService.getRecentHistory()).thenReturn(new ArrayList<>());
 
@@ -80,13 +81,13 @@ class CalculatorControllerTest {
                 .andExpect(view().name("calculator"))
                 .andExpect(model().attributeExists("error"));
 
-        verify(calculatorService, times(1)).calculate(10.0, 0.0, "divide");
+        verify(calculatorService, times(1)).calculateFormSubmission(10.0, 0.0, "divide", null);
     }
 
     @Test
     void testCalculateInvalidOperator() throws Exception {
         // Given
-        when(calculatorService.calculate(anyDouble(), anyDouble(), eq("invalid")))
+        when(calculatorService.calculateFormSubmission(anyDouble(), anyDouble(), eq("invalid"), isNull()))
                 .thenThrow(new IllegalArgumentException("Invalid operator: invalid"));
         when(calculatorService.getRecentHistory()).thenReturn(new ArrayList<>());
 
@@ -113,7 +114,7 @@ class CalculatorControllerTest {
     @Test
     void testCalculateSubtraction() throws Exception {
         // Given
-        when(calculatorService.calculate(10.0, 5.0, "subtract")).thenReturn(5.0);
+        when(calculatorService.calculateFormSubmission(10.0, 5.0, "subtract", null)).thenReturn(5.0);
         when(calculatorService.getRecentHistory()).thenReturn(new ArrayList<>());
 
         // When & Then
@@ -128,7 +129,7 @@ class CalculatorControllerTest {
     @Test
     void testCalculateMultiplication() throws Exception {
         // Given
-        when(calculatorService.calculate(10.0, 5.0, "multiply")).thenReturn(50.0);
+        when(calculatorService.calculateFormSubmission(10.0, 5.0, "multiply", null)).thenReturn(50.0);
         when(calculatorService.getRecentHistory()).thenReturn(new ArrayList<>());
 
         // When & Then
@@ -143,7 +144,7 @@ class CalculatorControllerTest {
     @Test
     void testCalculateDivision() throws Exception {
         // Given
-        when(calculatorService.calculate(10.0, 5.0, "divide")).thenReturn(2.0);
+        when(calculatorService.calculateFormSubmission(10.0, 5.0, "divide", null)).thenReturn(2.0);
         when(calculatorService.getRecentHistory()).thenReturn(new ArrayList<>());
 
         // When & Then
@@ -154,4 +155,62 @@ class CalculatorControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(model().attribute("result", 2.0));
     }
+
+    @Test
+    void testCalculateWithIdempotencyKeyHeader() throws Exception {
+        // Given
+        when(calculatorService.calculate(10.0, 5.0, "add", "key-1")).thenReturn(15.0);
+        when(calculatorService.getRecentHistory()).thenReturn(new ArrayList<>());
+
+        // When & Then
+        mockMvc.perform(post("/calculate")
+                .header("Idempotency-Key", "key-1")
+                .param("operand1", "10")
+                .param("operand2", "5")
+                .param("operator", "add")
+                .param("idempotencyKey", "form-key"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("result", 15.0))
+                .andExpect(model().attributeExists("idempotencyKey"));
+
+        verify(calculatorService, times(1)).calculate(10.0, 5.0, "add", "key-1");
+    }
+
+    @Test
+    void testCalculateWithIdempotencyKeyParameter() throws Exception {
+        // Given
+        when(calculatorService.calculateFormSubmission(10.0, 5.0, "add", "form-key")).thenReturn(15.0);
+        when(calculatorService.getRecentHistory()).thenReturn(new ArrayList<>());
+
+        // When & Then
+        mockMvc.perform(post("/calculate")
+                .param("operand1", "10")
+                .param("operand2", "5")
+                .param("operator", "add")
+                .param("idempotencyKey", "form-key"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("result", 15.0));
+
+        verify(calculatorService, times(1)).calculateFormSubmission(10.0, 5.0, "add", "form-key");
+    }
+
+    @Test
+    void testBlankIdempotencyKeyHeaderFallsBackToParameter() throws Exception {
+        // Given
+        when(calculatorService.calculateFormSubmission(10.0, 5.0, "add", "form-key")).thenReturn(15.0);
+        when(calculatorService.getRecentHistory()).thenReturn(new ArrayList<>());
+
+        // When & Then
+        mockMvc.perform(post("/calculate")
+                .header("Idempotency-Key", " ")
+                .param("operand1", "10")
+                .param("operand2", "5")
+                .param("operator", "add")
+                .param("idempotencyKey", "form-key"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("result", 15.0));
+
+        verify(calculatorService, times(1)).calculateFormSubmission(10.0, 5.0, "add", "form-key");
+        verify(calculatorService, never()).calculate(anyDouble(), anyDouble(), anyString(), anyString());
+    }
 }
@@ -0,0 +1,290 @@
+package com.calculator.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CalculationIdempotencyCache.
+ */
+class CalculationIdempotencyCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicInteger executions;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executions = new AtomicInteger();
+    }
+
+    @Test
+    void testRepeatedKeyReturnsStoredResult() {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ofMinutes(10), 100);
+
+        // When
+        double first = cache.execute(key("key-1"), "10 add 5", () -> compute(15.0));
+        double second = cache.execute(key("key-1"), "10 add 5", () -> compute(99.0));
+
+        // Then
+        assertEquals(15.0, first, 0.001);
+        assertEquals(15.0, second, 0.001);
+        assertEquals(1, executions.get());
+        assertEquals(1.0, outcomeCount("miss"));
+        assertEquals(1.0, outcomeCount("hit"));
+    }
+
+    @Test
+    void testConcurrentDuplicatesCoalesce() throws Exception {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ofMinutes(10), 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // When
+            Future<Double> first = executor.submit(() -> cache.execute(key("key-1"), "10 add 5", () -> {
+                started.countDown();
+                await(release);
+                return compute(15.0);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Double> second = executor.submit(() -> cache.execute(key("key-1"), "10 add 5", () -> compute(99.0)));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (outcomeCount("coalesced") == 0) {
+                if (System.nanoTime() > deadline) {
+                    fail("Second request did not coalesce onto the in-flight calculation");
+                }
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            // Then
+            assertEquals(15.0, first.get(5, TimeUnit.SECONDS), 0.001);
+            assertEquals(15.0, second.get(5, TimeUnit.SECONDS), 0.001);
+            assertEquals(1, executions.get());
+            assertEquals(1.0, outcomeCount("coalesced"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testKeyReusedForDifferentCalculation() {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ofMinutes(10), 100);
+        cache.execute(key("key-1"), "10 add 5", () -> compute(15.0));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+                () -> cache.execute(key("key-1"), "10 subtract 5", () -> compute(5.0)));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void testFailedCalculationIsNotStored() {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ofMinutes(10), 100);
+
+        // When
+        assertThrows(ArithmeticException.class, () -> cache.execute(key("key-1"), "10 divide 0", () -> {
+            executions.incrementAndGet();
+            throw new ArithmeticException("Cannot divide by zero");
+        }));
+
+        // Then
+        assertEquals(0, cache.size());
+        assertThrows(ArithmeticException.class, () -> cache.execute(key("key-1"), "10 divide 0", () -> {
+            executions.incrementAndGet();
+            throw new ArithmeticException("Cannot divide by zero");
+        }));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void testExpiredKeyCalculatesAgain() {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ZERO, 100);
+
+        // When
+        cache.execute(key("key-1"), "10 add 5", () -> compute(15.0));
+        cache.execute(key("key-1"), "10 add 5", () -> compute(15.0));
+
+        // Then
+        assertEquals(2, executions.get());
+        assertEquals(2.0, outcomeCount("miss"));
+    }
+
+    @Test
+    void testOldestEntriesEvictedWhenFull() {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ofMinutes(10), 2);
+
+        // When
+        cache.execute(key("key-1"), "1 add 1", () -> compute(2.0));
+        cache.execute(key("key-2"), "2 add 2", () -> compute(4.0));
+        cache.execute(key("key-3"), "3 add 3", () -> compute(6.0));
+        cache.execute(key("key-3"), "3 add 3", () -> compute(6.0));
+        cache.execute(key("key-1"), "1 add 1", () -> compute(2.0));
+
+        // Then
+        assertEquals(2, cache.size());
+        assertEquals(4, executions.get());
+    }
+
+    @Test
+    void testErrorReleasesKey() {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ofMinutes(10), 100);
+
+        // When
+        assertThrows(StackOverflowError.class, () -> cache.execute(key("key-1"), "10 add 5", () -> {
+            throw new StackOverflowError();
+        }));
+
+        // Then
+        assertEquals(0, cache.size());
+        assertEquals(15.0, cache.execute(key("key-1"), "10 add 5", () -> compute(15.0)), 0.001);
+    }
+
+    @Test
+    void testWaitForInFlightCalculationTimesOut() throws Exception {
+        // Given
+        CalculationIdempotencyCache cache = new CalculationIdempotencyCache(
+                Duration.ofMinutes(10), 100, Duration.ofMillis(50), meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<Double> first = executor.submit(() -> cache.execute(key("key-1"), "10 add 5", () -> {
+                started.countDown();
+                await(release);
+                return compute(15.0);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // When & Then
+            assertThrows(IllegalStateException.class,
+                    () -> cache.execute(key("key-1"), "10 add 5", () -> compute(99.0)));
+            release.countDown();
+            assertEquals(15.0, first.get(5, TimeUnit.SECONDS), 0.001);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testExpiredEntriesSweptBelowCapacity() {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ZERO, 100);
+
+        // When
+        cache.execute(key("key-1"), "1 add 1", () -> compute(2.0));
+        cache.execute(key("key-2"), "2 add 2", () -> compute(4.0));
+
+        // Then
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testInFlightEntryDoesNotBlockEviction() throws Exception {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ofMinutes(10), 2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<Double> blocked = executor.submit(() -> cache.execute(key("key-1"), "1 add 1", () -> {
+                started.countDown();
+                await(release);
+                return compute(2.0);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // When
+            cache.execute(key("key-2"), "2 add 2", () -> compute(4.0));
+            cache.execute(key("key-3"), "3 add 3", () -> compute(6.0));
+            cache.execute(key("key-4"), "4 add 4", () -> compute(8.0));
+
+            // Then
+            assertEquals(2, cache.size());
+            cache.execute(key("key-4"), "4 add 4", () -> compute(8.0));
+            assertEquals(1.0, outcomeCount("hit"));
+            release.countDown();
+            assertEquals(2.0, blocked.get(5, TimeUnit.SECONDS), 0.001);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testResultNotStoredWhenFullOfInFlightEntries() throws Exception {
+        // Given
+        CalculationIdempotencyCache cache = newCache(Duration.ofMinutes(10), 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<Double> blocked = executor.submit(() -> cache.execute(key("key-1"), "1 add 1", () -> {
+                started.countDown();
+                await(release);
+                return compute(2.0);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // When
+            double first = cache.execute(key("key-2"), "2 add 2", () -> compute(4.0));
+            double second = cache.execute(key("key-2"), "2 add 2", () -> compute(4.0));
+
+            // Then
+            assertEquals(4.0, first, 0.001);
+            assertEquals(4.0, second, 0.001);
+            assertEquals(1, cache.size());
+            assertEquals(2, executions.get());
+            release.countDown();
+            assertEquals(2.0, blocked.get(5, TimeUnit.SECONDS), 0.001);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static IdempotencyKey key(String value) {
+        return IdempotencyKey.header(value);
+    }
+
+    private CalculationIdempotencyCache newCache(Duration ttl, int maxEntries) {
+        return new CalculationIdempotencyCache(ttl, maxEntries, Duration.ofSeconds(5), meterRegistry);
+    }
+
+    private double compute(double result) {
+        executions.incrementAndGet();
+        return result;
+    }
+
+    private double outcomeCount(String outcome) {
+        return meterRegistry.get("calculator.idempotency.requests").tag("outcome", outcome).counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.calculator.service;
 
 import com.calculator.model.CalculationHistory;
 import com.calculator.repository.CalculationHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,6 +10,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 
@@ -25,6 +27,9 @@ class CalculatorServiceTest {
     @Mock
     private CalculationHistoryRepository historyRepository;
 
+    @Mock
+    private CalculationIdempotencyCache idempotencyCache;
+
     @InjectMocks
     private CalculatorService calculatorService;
 
@@ -134,4 +139,90 @@ class CalculatorServiceTest {
         // Then
         assertEquals(26.25, result, 0.001);
     }
+
+    @Test
+    void testRepeatedIdempotencyKeySavesHistoryOnce() {
+        // Given
+        CalculatorService service = newServiceWithCache();
+
+        // When
+        double first = service.calculate(10, 5, "add", "key-1");
+        double second = service.calculate(10, 5, "add", "key-1");
+
+        // Then
+        assertEquals(15.0, first, 0.001);
+        assertEquals(15.0, second, 0.001);
+        verify(historyRepository, times(1)).save(any(CalculationHistory.class));
+    }
+
+    @Test
+    void testBlankIdempotencyKeyCalculatesEveryTime() {
+        // When
+        calculatorService.calculate(10, 5, "add", " ");
+        calculatorService.calculate(10, 5, "add", null);
+        calculatorService.calculateFormSubmission(10, 5, "add", "");
+
+        // Then
+        verify(historyRepository, times(3)).save(any(CalculationHistory.class));
+        verifyNoInteractions(idempotencyCache);
+    }
+
+    @Test
+    void testFormKeyReusedForNewValuesAfterBackButton() {
+        // Given
+        CalculatorService service = newServiceWithCache();
+        service.calculateFormSubmission(3, 4, "multiply", "form-key");
+
+        // When
+        double result = service.calculateFormSubmission(10, 5, "add", "form-key");
+        service.calculateFormSubmission(10, 5, "add", "form-key");
+
+        // Then
+        assertEquals(15.0, result, 0.001);
+        verify(historyRepository, times(2)).save(any(CalculationHistory.class));
+    }
+
+    @Test
+    void testHeaderKeyReusedForDifferentCalculationRejected() {
+        // Given
+        CalculatorService service = newServiceWithCache();
+        service.calculate(3, 4, "multiply", "key-1");
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> service.calculate(10, 5, "add", "key-1"));
+        verify(historyRepository, times(1)).save(any(CalculationHistory.class));
+    }
+
+    @Test
+    void testOverlongIdempotencyKeyRejected() {
+        // Given
+        String key = "k".repeat(CalculatorService.MAX_IDEMPOTENCY_KEY_LENGTH + 1);
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> calculatorService.calculate(10, 5, "add", key));
+        assertThrows(IllegalArgumentException.class,
+                () -> calculatorService.calculateFormSubmission(10, 5, "add", key));
+        verify(historyRepository, never()).save(any());
+        verifyNoInteractions(idempotencyCache);
+    }
+
+    @Test
+    void testHeaderKeyDoesNotCollideWithFormKey() {
+        // Given
+        CalculatorService service = newServiceWithCache();
+        service.calculateFormSubmission(10, 5, "add", "K");
+
+        // When
+        double result = service.calculate(3, 4, "multiply", "K|10.0 add 5.0");
+        service.calculate(3, 4, "multiply", "K");
+
+        // Then
+        assertEquals(12.0, result, 0.001);
+        verify(historyRepository, times(3)).save(any(CalculationHistory.class));
+    }
+
+    private CalculatorService newServiceWithCache() {
+        return new CalculatorService(historyRepository, new CalculationIdempotencyCache(
+                Duration.ofMinutes(10), 100, Duration.ofSeconds(5), new SimpleMeterRegistry()));
+    }
 }